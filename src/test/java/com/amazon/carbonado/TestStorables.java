@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +33,11 @@ import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
@@ -1328,6 +1334,81 @@ public class TestStorables extends TestCase {
         s.update();
     }
 
+    public void test_transactionalPersist() throws Exception {
+        Storage<StorableSequenced> seqStorage =
+            getRepository().storageFor(StorableSequenced.class);
+        Storage<StorableVersioned> verStorage =
+            getRepository().storageFor(StorableVersioned.class);
+
+        Transaction txn = getRepository().enterTransaction();
+        try {
+            // Generated keys must be available as soon as insert returns.
+            long lastID = 0;
+            for (int i=0; i<100; i++) {
+                StorableSequenced seq = seqStorage.prepare();
+                seq.setData("data-" + i);
+                seq.insert();
+                assertTrue(seq.getID() > lastID);
+                lastID = seq.getID();
+            }
+
+            // Reads within the transaction observe all preceding writes.
+            assertEquals(100, seqStorage.query().count());
+            StorableSequenced seq = seqStorage.prepare();
+            seq.setID(lastID);
+            seq.load();
+            assertEquals("data-99", seq.getData());
+
+            // Constraint failures are reported by the operation which caused them.
+            StorableSequenced dup = seqStorage.prepare();
+            dup.setID(lastID);
+            dup.setSomeInt(0);
+            dup.setSomeIntegerObj(0);
+            dup.setSomeLong(0);
+            dup.setSomeLongObj(0L);
+            dup.setSomeString("0");
+            dup.setData("dup");
+            assertFalse(dup.tryInsert());
+
+            // Version checks are applied to each update.
+            StorableVersioned ver = verStorage.prepare();
+            ver.setID(1);
+            ver.setValue("a");
+            ver.insert();
+            assertEquals(1, ver.getVersion());
+
+            StorableVersioned stale = verStorage.prepare();
+            stale.setID(1);
+            stale.load();
+
+            ver.setValue("b");
+            ver.update();
+            ver.setValue("c");
+            ver.update();
+            assertEquals(3, ver.getVersion());
+
+            stale.setValue("stale");
+            try {
+                stale.update();
+                fail();
+            } catch (OptimisticLockException e) {
+            }
+
+            txn.commit();
+        } finally {
+            txn.exit();
+        }
+
+        assertEquals(100, seqStorage.query().count());
+        assertEquals(1, seqStorage.query("data = ?").with("data-50").count());
+
+        StorableVersioned ver = verStorage.prepare();
+        ver.setID(1);
+        ver.load();
+        assertEquals("c", ver.getValue());
+        assertEquals(3, ver.getVersion());
+    }
+
     public void test_sequences() throws Exception {
         Storage<StorableSequenced> storage = getRepository().storageFor(StorableSequenced.class);
 
@@ -1816,6 +1897,106 @@ public class TestStorables extends TestCase {
         assertEquals("Jones", user.getLastName());
     }
 
+    public void test_reloadAfterModify() throws Exception {
+        Storage<StorableTestBasic> storage = getRepository().storageFor(StorableTestBasic.class);
+
+        StorableTestBasic sb = storage.prepare();
+        sb.setId(1);
+        sb.setStringProp("one");
+        sb.setIntProp(1);
+        sb.setLongProp(1);
+        sb.setDoubleProp(1.0);
+        sb.insert();
+
+        // Repeated loads, then an update through a different instance.
+        for (int i=0; i<3; i++) {
+            StorableTestBasic copy = storage.prepare();
+            copy.setId(1);
+            copy.load();
+            assertEquals("one", copy.getStringProp());
+        }
+
+        StorableTestBasic other = storage.prepare();
+        other.setId(1);
+        other.load();
+        other.setStringProp("uno");
+        other.update();
+
+        StorableTestBasic copy = storage.prepare();
+        copy.setId(1);
+        copy.load();
+        assertEquals("uno", copy.getStringProp());
+
+        // Uncommitted changes are visible within the transaction only until
+        // it rolls back.
+        Transaction txn = getRepository().enterTransaction();
+        try {
+            other.setStringProp("eins");
+            other.update();
+
+            copy = storage.prepare();
+            copy.setId(1);
+            copy.load();
+            assertEquals("eins", copy.getStringProp());
+        } finally {
+            txn.exit();
+        }
+
+        copy = storage.prepare();
+        copy.setId(1);
+        copy.load();
+        assertEquals("uno", copy.getStringProp());
+
+        // Committed changes remain.
+        txn = getRepository().enterTransaction();
+        try {
+            copy.setStringProp("un");
+            copy.update();
+            txn.commit();
+        } finally {
+            txn.exit();
+        }
+
+        copy = storage.prepare();
+        copy.setId(1);
+        copy.load();
+        assertEquals("un", copy.getStringProp());
+
+        // Rolled back delete.
+        txn = getRepository().enterTransaction();
+        try {
+            copy.delete();
+            StorableTestBasic gone = storage.prepare();
+            gone.setId(1);
+            assertFalse(gone.tryLoad());
+        } finally {
+            txn.exit();
+        }
+
+        copy = storage.prepare();
+        copy.setId(1);
+        assertTrue(copy.tryLoad());
+        assertEquals("un", copy.getStringProp());
+
+        // Committed delete, and then re-insert with different values.
+        copy.delete();
+        copy = storage.prepare();
+        copy.setId(1);
+        assertFalse(copy.tryLoad());
+
+        copy.setStringProp("neu");
+        copy.setIntProp(2);
+        copy.setLongProp(2);
+        copy.setDoubleProp(2.0);
+        copy.insert();
+
+        copy = storage.prepare();
+        copy.setId(1);
+        copy.load();
+        assertEquals("neu", copy.getStringProp());
+        assertEquals(2, copy.getIntProp());
+    }
+
     public void test_deleteState() throws Exception {
         Storage<UserInfo> uiStorage = getRepository().storageFor(UserInfo.class);
 
@@ -2666,6 +2847,472 @@ public class TestStorables extends TestCase {
         assertEquals(88, results.get(1).getId());
     }
 
+    public void test_indexEndpoints() throws Exception {
+        test_indexEndpoints(false);
+    }
+    public void test_indexEndpointsIndexed() throws Exception {
+        test_indexEndpoints(true);
+    }
+
+    public void test_indexEndpointsPlan() throws Exception {
+        Storage<StorableTestBasicIndexed> storage =
+            getRepository().storageFor(StorableTestBasicIndexed.class);
+
+        // Minimum and maximum must come from the ends of the index, not from
+        // sorting a full scan.
+
+        StringBuffer buf = new StringBuffer();
+        storage.query().orderBy("longProp").printPlan(buf);
+        String plan = buf.toString();
+
+        String expected =
+            "index scan: com.amazon.carbonado.stored.StorableTestBasicIndexed\n" +
+            "...index: {properties=[+longProp, ~id], unique=true}\n";
+
+        assertEquals(expected, plan);
+
+        buf = new StringBuffer();
+        storage.query().orderBy("-longProp").printPlan(buf);
+        plan = buf.toString();
+
+        expected =
+            "reverse index scan: com.amazon.carbonado.stored.StorableTestBasicIndexed\n" +
+            "...index: {properties=[+longProp, ~id], unique=true}\n";
+
+        assertEquals(expected, plan);
+    }
+
+    private void test_indexEndpoints(boolean indexed) throws Exception {
+        Storage<? extends StorableTestBasic> storage;
+        if (indexed) {
+            storage = getRepository().storageFor(StorableTestBasicIndexed.class);
+        } else {
+            storage = getRepository().storageFor(StorableTestBasic.class);
+        }
+
+        assertEquals(0, storage.query().orderBy("longProp").fetchSlice(0, 1L).toList().size());
+
+        for (int i=0; i<100; i++) {
+            StorableTestBasic sb = storage.prepare();
+            sb.setId(i);
+            sb.setIntProp(i % 10);
+            sb.setLongProp((i * 37) % 101);
+            sb.setDoubleProp(i);
+            sb.setStringProp(String.valueOf(i));
+            sb.insert();
+        }
+
+        // Minimum and maximum, as an aggregate over an index would select them.
+        List<? extends StorableTestBasic> results;
+        results = storage.query().orderBy("longProp").fetchSlice(0, 1L).toList();
+        assertEquals(1, results.size());
+        assertEquals(0, results.get(0).getLongProp());
+        results = storage.query().orderBy("-longProp").fetchSlice(0, 1L).toList();
+        assertEquals(1, results.size());
+        assertEquals(100, results.get(0).getLongProp());
+
+        // Endpoints of a filtered range.
+        Query<? extends StorableTestBasic> query =
+            storage.query("longProp >= ? & longProp < ?").with(10L).with(20L);
+        results = query.orderBy("longProp").fetchSlice(0, 1L).toList();
+        assertEquals(10, results.get(0).getLongProp());
+        results = query.orderBy("-longProp").fetchSlice(0, 1L).toList();
+        assertEquals(19, results.get(0).getLongProp());
+
+        // Endpoints within a group.
+        query = storage.query("intProp = ?").with(3);
+        results = query.orderBy("longProp").fetchSlice(0, 1L).toList();
+        long min = results.get(0).getLongProp();
+        results = query.orderBy("-longProp").fetchSlice(0, 1L).toList();
+        long max = results.get(0).getLongProp();
+
+        long groupMin = Long.MAX_VALUE;
+        long groupMax = Long.MIN_VALUE;
+        Cursor<? extends StorableTestBasic> cursor = query.fetch();
+        while (cursor.hasNext()) {
+            long value = cursor.next().getLongProp();
+            groupMin = Math.min(groupMin, value);
+            groupMax = Math.max(groupMax, value);
+        }
+        assertEquals(groupMin, min);
+        assertEquals(groupMax, max);
+        assertEquals(10, query.count());
+
+        assertEquals(100, storage.query().count());
+    }
+
+    public void test_partitionedScan() throws Exception {
+        final Storage<StorableTestBasic> storage =
+            getRepository().storageFor(StorableTestBasic.class);
+
+        final int total = 10000;
+        insertBasic(storage, total, 1, 7);
+
+        // Scan and filter disjoint key ranges concurrently, and verify that
+        // together they produce the same results as a single full scan.
+
+        final int partitions = 4;
+        final int partitionSize = total / partitions;
+
+        List<List<StorableTestBasic>> partResults = new ArrayList<List<StorableTestBasic>>();
+
+        ExecutorService es = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<List<StorableTestBasic>>> parts =
+                new ArrayList<Future<List<StorableTestBasic>>>();
+            for (int i=0; i<partitions; i++) {
+                final int part = i;
+                parts.add(es.submit(new Callable<List<StorableTestBasic>>() {
+                    public List<StorableTestBasic> call() throws Exception {
+                        return storage
+                            .query("id >= ? & id < ? & intProp = ?")
+                            .with(part * partitionSize)
+                            .with((part + 1) * partitionSize)
+                            .with(3)
+                            .orderBy("id")
+                            .fetch().toList();
+                    }
+                }));
+            }
+
+            for (Future<List<StorableTestBasic>> part : parts) {
+                partResults.add(part.get());
+            }
+        } finally {
+            es.shutdown();
+        }
+
+        Cursor<StorableTestBasic> cursor =
+            storage.query("intProp = ?").with(3).orderBy("id").fetch();
+
+        int count = 0;
+        for (List<StorableTestBasic> part : partResults) {
+            for (StorableTestBasic sb : part) {
+                assertTrue(cursor.hasNext());
+                StorableTestBasic expected = cursor.next();
+                assertEquals(expected.getId(), sb.getId());
+                assertEquals(3, sb.getIntProp());
+                assertEquals(sb.getId(), sb.getLongProp());
+                count++;
+            }
+        }
+        assertFalse(cursor.hasNext());
+
+        assertEquals(storage.query("intProp = ?").with(3).count(), count);
+    }
+
+    /**
+     * Inserts records with ids spaced by idStep, intProp cycling through
+     * [0, intMod), and the remaining properties derived from the sequence
+     * number. Commits every 100 records.
+     */
+    private void insertBasic(Storage<StorableTestBasic> storage,
+                             int total, int idStep, int intMod) throws RepositoryException
+    {
+        Transaction txn = getRepository().enterTransaction();
+        try {
+            for (int i=0; i<total; i++) {
+                StorableTestBasic sb = storage.prepare();
+                sb.setId(i * idStep);
+                sb.setIntProp(i % intMod);
+                sb.setLongProp(i);
+                sb.setDoubleProp(i);
+                sb.setStringProp(String.valueOf(i));
+                sb.insert();
+                if (i % 100 == 0) {
+                    txn.commit();
+                }
+            }
+            txn.commit();
+        } finally {
+            txn.exit();
+        }
+    }
+
+    public void test_cursorConsumption() throws Exception {
+        Storage<StorableTestBasic> storage = getRepository().storageFor(StorableTestBasic.class);
+
+        final int total = 1000;
+        insertBasic(storage, total, 1, 1);
+
+        // Mix partial list, skip and single element consumption, and verify
+        // that no elements are lost or repeated.
+        Cursor<StorableTestBasic> cursor = storage.query().orderBy("id").fetch();
+        int expected = 0;
+        while (true) {
+            List<StorableTestBasic> list = cursor.toList(7);
+            for (StorableTestBasic sb : list) {
+                assertEquals(expected++, sb.getId());
+            }
+            expected += cursor.skipNext(3);
+            if (!cursor.hasNext()) {
+                break;
+            }
+            assertEquals(expected++, cursor.next().getId());
+        }
+        assertEquals(total, expected);
+        cursor.close();
+
+        // Update each record while iterating within a transaction.
+        Transaction txn = getRepository().enterTransaction();
+        try {
+            cursor = storage.query().orderBy("id").fetch();
+            expected = 0;
+            while (cursor.hasNext()) {
+                StorableTestBasic sb = cursor.next();
+                assertEquals(expected++, sb.getId());
+                assertEquals(0, sb.getIntProp());
+                sb.setIntProp(1);
+                sb.update();
+            }
+            assertEquals(total, expected);
+            txn.commit();
+        } finally {
+            txn.exit();
+        }
+
+        assertEquals(total, storage.query("intProp = ?").with(1).count());
+
+        // Abandon a cursor partway within a transaction.
+        txn = getRepository().enterTransaction();
+        try {
+            cursor = storage.query().orderBy("id").fetch();
+            for (int i=0; i<10; i++) {
+                StorableTestBasic sb = cursor.next();
+                sb.setIntProp(2);
+                sb.update();
+            }
+            txn.commit();
+        } finally {
+            txn.exit();
+        }
+
+        // Exiting the transaction must have closed the abandoned cursor,
+        // without interfering with later operations.
+        assertFalse(cursor.hasNext());
+
+        StorableTestBasic last = storage.prepare();
+        last.setId(total - 1);
+        last.load();
+        last.setIntProp(2);
+        last.update();
+
+        assertEquals(11, storage.query("intProp = ?").with(2).count());
+        assertEquals(total - 11, storage.query("intProp = ?").with(1).count());
+    }
+
+    public void test_countMatchesFetch() throws Exception {
+        Storage<StorableTestBasicIndexed> storage =
+            getRepository().storageFor(StorableTestBasicIndexed.class);
+
+        for (int i=0; i<200; i++) {
+            StorableTestBasicIndexed sb = storage.prepare();
+            sb.setId(i);
+            sb.setIntProp(i % 13);
+            sb.setLongProp(i % 17);
+            sb.setDoubleProp(i);
+            sb.setStringProp(String.valueOf(i));
+            sb.insert();
+        }
+
+        String[] filters = {
+            null, "id >= ?", "intProp = ?", "intProp > ?", "longProp = ? | intProp = ?",
+            "intProp = ? & longProp != ?", "stringProp >= ?",
+        };
+
+        Object[][] values = {
+            {}, {50}, {3}, {10}, {5L, 7}, {3, 3L}, {"5"},
+        };
+
+        String[][] orderings = {
+            {}, {"id"}, {"-id"}, {"intProp", "id"}, {"-longProp", "doubleProp"}, {"stringProp"},
+        };
+
+        for (int i=0; i<filters.length; i++) {
+            Query<StorableTestBasicIndexed> query;
+            if (filters[i] == null) {
+                query = storage.query();
+            } else {
+                query = storage.query(filters[i]).withValues(values[i]);
+            }
+
+            long count = query.count();
+
+            for (String[] orderBy : orderings) {
+                Query<StorableTestBasicIndexed> ordered = query;
+                Comparator<StorableTestBasicIndexed> comparator = null;
+                if (orderBy.length > 0) {
+                    ordered = query.orderBy(orderBy);
+                    comparator = SortedCursor
+                        .createComparator(StorableTestBasicIndexed.class, orderBy);
+                }
+
+                List<StorableTestBasicIndexed> results = ordered.fetch().toList();
+                assertEquals(count, results.size());
+
+                if (comparator != null) {
+                    for (int j=1; j<results.size(); j++) {
+                        assertTrue(comparator.compare(results.get(j - 1), results.get(j)) <= 0);
+                    }
+                }
+            }
+        }
+    }
+
+    public void test_concurrentLookups() throws Exception {
+        final Storage<StorableTestBasic> storage =
+            getRepository().storageFor(StorableTestBasic.class);
+
+        final int total = 500;
+        insertBasic(storage, total, 1, 10);
+
+        // Fan out many independent loads and counts, as a request handler
+        // would, and verify that each completes with its own result.
+
+        ExecutorService es = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Long>> loads = new ArrayList<Future<Long>>();
+            for (int i=0; i<total; i++) {
+                final int id = i;
+                loads.add(es.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        StorableTestBasic sb = storage.prepare();
+                        sb.setId(id);
+                        sb.load();
+                        return sb.getLongProp();
+                    }
+                }));
+            }
+
+            List<Future<Long>> counts = new ArrayList<Future<Long>>();
+            for (int i=0; i<10; i++) {
+                final int value = i;
+                counts.add(es.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return storage.query("intProp = ?").with(value).count();
+                    }
+                }));
+            }
+
+            for (int i=0; i<total; i++) {
+                assertEquals(i, loads.get(i).get().longValue());
+            }
+
+            for (Future<Long> count : counts) {
+                assertEquals(total / 10, count.get().longValue());
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    public void test_rangeScans() throws Exception {
+        Storage<StorableTestBasic> storage = getRepository().storageFor(StorableTestBasic.class);
+
+        final int total = 10000;
+        insertBasic(storage, total, 2, total);
+
+        // Ranges with inclusive and exclusive bounds which do and do not fall
+        // on existing keys, scanned in both directions.
+        int[][] ranges = {
+            {0, total * 2}, {1, 9999}, {2, 10000}, {5000, 5001}, {-10, 3}, {19990, 30000},
+        };
+
+        for (int[] range : ranges) {
+            int low = range[0];
+            int high = range[1];
+
+            for (int bounds=0; bounds<4; bounds++) {
+                String lowOp = (bounds & 1) == 0 ? ">=" : ">";
+                String highOp = (bounds & 2) == 0 ? "<=" : "<";
+
+                int first = (bounds & 1) == 0 ? low : low + 1;
+                int last = (bounds & 2) == 0 ? high : high - 1;
+                first = Math.max(0, first + (first & 1));
+                last = Math.min((total - 1) * 2, last - (last & 1));
+
+                Query<StorableTestBasic> query = storage
+                    .query("id " + lowOp + " ? & id " + highOp + " ?").with(low).with(high);
+
+                Cursor<StorableTestBasic> cursor = query.orderBy("id").fetch();
+                int expected = first;
+                while (cursor.hasNext()) {
+                    assertEquals(expected, cursor.next().getId());
+                    expected += 2;
+                }
+                assertEquals(Math.max(first, last + 2), expected);
+
+                cursor = query.orderBy("-id").fetch();
+                expected = last;
+                while (cursor.hasNext()) {
+                    assertEquals(expected, cursor.next().getId());
+                    expected -= 2;
+                }
+                assertEquals(Math.min(last, first - 2), expected);
+            }
+        }
+    }
+
+    public void test_fetchSliceEdges() throws Exception {
+        Storage<StorableTestBasic> storage = getRepository().storageFor(StorableTestBasic.class);
+
+        insertBasic(storage, 100, 1, 10);
+
+        List<StorableTestBasic> results;
+
+        // Empty and out of range slices
+        results = storage.query().orderBy("id").fetchSlice(10, 10L).toList();
+        assertEquals(0, results.size());
+        results = storage.query().orderBy("id").fetchSlice(100, null).toList();
+        assertEquals(0, results.size());
+        results = storage.query().orderBy("id").fetchSlice(150, 200L).toList();
+        assertEquals(0, results.size());
+        results = storage.query().orderBy("id").fetchSlice(95, 200L).toList();
+        assertEquals(5, results.size());
+        assertEquals(95, results.get(0).getId());
+        assertEquals(99, results.get(4).getId());
+
+        // Descending order
+        results = storage.query().orderBy("-id").fetchSlice(10, 13L).toList();
+        assertEquals(3, results.size());
+        assertEquals(89, results.get(0).getId());
+        assertEquals(88, results.get(1).getId());
+        assertEquals(87, results.get(2).getId());
+
+        // Multiple properties, with ties broken by the second
+        results = storage.query().orderBy("intProp", "-id").fetchSlice(8, 12L).toList();
+        assertEquals(4, results.size());
+        assertEquals(10, results.get(0).getId());
+        assertEquals(0, results.get(1).getId());
+        assertEquals(91, results.get(2).getId());
+        assertEquals(81, results.get(3).getId());
+
+        // Filter and descending slice
+        Query<StorableTestBasic> query = storage.query("intProp = ?").with(3).orderBy("-id");
+        results = query.fetchSlice(2, 5L).toList();
+        assertEquals(3, results.size());
+        assertEquals(73, results.get(0).getId());
+        assertEquals(63, results.get(1).getId());
+        assertEquals(53, results.get(2).getId());
+
+        // Consecutive slices cover all results exactly once
+        query = storage.query("longProp >= ?").with(17L).orderBy("intProp", "id");
+        Comparator<StorableTestBasic> comparator =
+            SortedCursor.createComparator(StorableTestBasic.class, "intProp", "id");
+        StorableTestBasic last = null;
+        int total = 0;
+        for (int from=0; from<100; from+=7) {
+            for (StorableTestBasic sb : query.fetchSlice(from, from + 7L).toList()) {
+                if (last != null) {
+                    assertTrue(comparator.compare(last, sb) < 0);
+                }
+                last = sb;
+                total++;
+            }
+        }
+        assertEquals(83, total);
+    }
+
     public void test_lobInsert() throws Exception {
         Storage<StorableWithLobs> storage = getRepository().storageFor(StorableWithLobs.class);
 
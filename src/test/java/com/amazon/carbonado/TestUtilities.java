@@ -18,7 +18,11 @@
 package com.amazon.carbonado;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
@@ -211,6 +215,24 @@ public class TestUtilities {
         recursiveDelete(file);
     }
 
+    public static void copyFile(File from, File to) throws IOException {
+        byte[] buf = new byte[1024];
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                int amt;
+                while ((amt = in.read(buf)) > 0) {
+                    out.write(buf, 0, amt);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
     private static void recursiveDelete(File file) {
         if (file.isDirectory()) {
             for (File f : file.listFiles()) {
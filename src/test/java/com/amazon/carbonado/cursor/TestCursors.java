@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -448,6 +449,54 @@ public class TestCursors extends TestCase {
         compareElements(diff, 1, 1, 1, 1, 2, 3, 3, 3, 3, 4, 4, 4);
     }
 
+    public void testRandomSetOperations() throws Exception {
+        // Verify multiset semantics of the set operation cursors against
+        // counts computed by value, using random inputs with duplicates.
+        Random rnd = new Random(5610923847L);
+
+        for (int round=0; round<100; round++) {
+            int range = 1 + rnd.nextInt(50);
+            int[] leftCounts = new int[range];
+            int[] rightCounts = new int[range];
+            int[] leftIDs = randomIDs(rnd, range, leftCounts);
+            int[] rightIDs = randomIDs(rnd, range, rightCounts);
+
+            int[] expected = new int[range];
+
+            for (int i=0; i<range; i++) {
+                expected[i] = Math.max(leftCounts[i], rightCounts[i]);
+            }
+            compareElements(new UnionCursor<Element>
+                            (createElements(leftIDs), createElements(rightIDs),
+                             new ElementComparator()),
+                            expandCounts(expected));
+
+            for (int i=0; i<range; i++) {
+                expected[i] = Math.min(leftCounts[i], rightCounts[i]);
+            }
+            compareElements(new IntersectionCursor<Element>
+                            (createElements(leftIDs), createElements(rightIDs),
+                             new ElementComparator()),
+                            expandCounts(expected));
+
+            for (int i=0; i<range; i++) {
+                expected[i] = Math.max(0, leftCounts[i] - rightCounts[i]);
+            }
+            compareElements(new DifferenceCursor<Element>
+                            (createElements(leftIDs), createElements(rightIDs),
+                             new ElementComparator()),
+                            expandCounts(expected));
+
+            for (int i=0; i<range; i++) {
+                expected[i] = Math.abs(leftCounts[i] - rightCounts[i]);
+            }
+            compareElements(new SymmetricDifferenceCursor<Element>
+                            (createElements(leftIDs), createElements(rightIDs),
+                             new ElementComparator()),
+                            expandCounts(expected));
+        }
+    }
+
     public void testFetchTimeout() throws Exception {
         Infinite inf = new Infinite();
         long start = System.nanoTime();
@@ -465,6 +514,35 @@ public class TestCursors extends TestCase {
         }
     }
 
+    /**
+     * Returns random ids in the range [0, range), possibly repeated, and
+     * tallies them in counts. Ids are sorted later by createElements.
+     */
+    private int[] randomIDs(Random rnd, int range, int[] counts) {
+        int[] ids = new int[rnd.nextInt(range * 2 + 1)];
+        for (int i=0; i<ids.length; i++) {
+            int id = rnd.nextInt(range);
+            ids[i] = id;
+            counts[id]++;
+        }
+        return ids;
+    }
+
+    private int[] expandCounts(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        int[] ids = new int[total];
+        int pos = 0;
+        for (int id=0; id<counts.length; id++) {
+            for (int i=0; i<counts[id]; i++) {
+                ids[pos++] = id;
+            }
+        }
+        return ids;
+    }
+
     private Cursor<Element> createElements(int... ids) {
         Arrays.sort(ids);
         Element[] elements = new Element[ids.length];
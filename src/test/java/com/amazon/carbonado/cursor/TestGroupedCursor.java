@@ -20,7 +20,10 @@ package com.amazon.carbonado.cursor;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -184,6 +187,73 @@ public class TestGroupedCursor extends TestCase {
         assertEquals(16, pairs.get(3).sum);
     }
 
+    public void testUnsortedInput() throws Exception {
+        // Grouping relies on the input being ordered by the group properties.
+        // Members of a group which are not adjacent form separate groups.
+        List<Triple> triples = new ArrayList<Triple>();
+        triples.add(new Triple(1, 1, 1));
+        triples.add(new Triple(3, 2, 16));
+        triples.add(new Triple(1, 1, 2));
+
+        Cursor<Pair> cursor = new TriplesToPairs(triples);
+
+        List<Pair> pairs = new ArrayList<Pair>();
+
+        while (cursor.hasNext()) {
+            pairs.add(cursor.next());
+        }
+
+        assertEquals(3, pairs.size());
+
+        assertEquals(1, pairs.get(0).getA());
+        assertEquals(1, pairs.get(0).getB());
+        assertEquals(1, pairs.get(0).sum);
+
+        assertEquals(3, pairs.get(1).getA());
+        assertEquals(2, pairs.get(1).getB());
+        assertEquals(16, pairs.get(1).sum);
+
+        assertEquals(1, pairs.get(2).getA());
+        assertEquals(1, pairs.get(2).getB());
+        assertEquals(2, pairs.get(2).sum);
+    }
+
+    public void testRandomGroups() throws Exception {
+        Random rnd = new Random(89234723);
+
+        List<Triple> triples = new ArrayList<Triple>();
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+
+        for (int i=0; i<10000; i++) {
+            Triple t = new Triple(rnd.nextInt(20), rnd.nextInt(20), rnd.nextInt(1000));
+            triples.add(t);
+            String key = t.getA() + ":" + t.getB();
+            Integer sum = expected.get(key);
+            expected.put(key, (sum == null ? 0 : sum) + t.getC());
+        }
+
+        Collections.sort(triples);
+
+        Cursor<Pair> cursor = new TriplesToPairs(triples);
+
+        Pair last = null;
+        int count = 0;
+
+        while (cursor.hasNext()) {
+            Pair pair = cursor.next();
+            if (last != null) {
+                assertTrue(last.compareTo(pair) < 0);
+            }
+            Integer sum = expected.get(pair.getA() + ":" + pair.getB());
+            assertNotNull(sum);
+            assertEquals(sum.intValue(), pair.sum);
+            last = pair;
+            count++;
+        }
+
+        assertEquals(expected.size(), count);
+    }
+
     static int compare(int x, int y) {
         if (x < y) {
             return -1;
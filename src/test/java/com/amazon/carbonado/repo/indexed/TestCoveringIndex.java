@@ -18,6 +18,8 @@
 
 package com.amazon.carbonado.repo.indexed;
 
+import java.util.List;
+
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
@@ -169,4 +171,68 @@ public class TestCoveringIndex extends TestCase {
         address = query.loadOne();
         assertEquals(3, address.getAddressID());
     }
+
+    public void testCoveredResultsFullyLoaded() throws Exception {
+        Storage<OverIndexedUserAddress> storage =
+            mRepository.storageFor(OverIndexedUserAddress.class);
+
+        for (int i=0; i<20; i++) {
+            OverIndexedUserAddress address = storage.prepare();
+            address.setAddressID(i);
+            address.setLine1("line1-" + i);
+            address.setLine2((i & 1) == 0 ? null : ("line2-" + i));
+            address.setCity((i & 2) == 0 ? "Springfield" : "San Dimas");
+            address.setState("Unknown");
+            address.setCountry("USA");
+            address.setPostalCode("postal-" + i);
+            address.insert();
+        }
+
+        // Filter is entirely covered by an index, but the results must still
+        // carry every property, including those not held by the index.
+        Query<OverIndexedUserAddress> query =
+            storage.query("state = ? & country > ? & city != ?")
+            .with("Unknown").with("D").with("Springfield");
+
+        StringBuffer buf = new StringBuffer();
+        query.printPlan(buf);
+        String plan = buf.toString();
+
+        String expected =
+            "index scan: com.amazon.carbonado.stored.OverIndexedUserAddress\n" +
+            "...index: {properties=[+state, +city, +country, +line2, +line1, ~addressID], unique=true}\n" +
+            "...identity filter: state = Unknown\n" +
+            "...covering filter: country > D & city != Springfield\n";
+
+        //System.out.println(plan);
+        assertEquals(expected, plan);
+
+        List<OverIndexedUserAddress> results = query.fetch().toList();
+        assertEquals(10, results.size());
+
+        for (OverIndexedUserAddress address : results) {
+            int id = address.getAddressID();
+            assertEquals("line1-" + id, address.getLine1());
+            assertEquals((id & 1) == 0 ? null : ("line2-" + id), address.getLine2());
+            assertEquals("San Dimas", address.getCity());
+            assertEquals("postal-" + id, address.getPostalCode());
+            assertNull(address.getNeighborAddressID());
+
+            assertEquals("Unknown", address.getState());
+            assertEquals("USA", address.getCountry());
+
+            assertTrue(address.isPropertyClean("addressID"));
+            assertTrue(address.isPropertyClean("line1"));
+            assertTrue(address.isPropertyClean("line2"));
+            assertTrue(address.isPropertyClean("city"));
+            assertTrue(address.isPropertyClean("state"));
+            assertTrue(address.isPropertyClean("country"));
+            assertTrue(address.isPropertyClean("postalCode"));
+            assertTrue(address.isPropertyClean("neighborAddressID"));
+
+            OverIndexedUserAddress copy = address.copy();
+            copy.load();
+            assertTrue(address.equalProperties(copy));
+        }
+    }
 }
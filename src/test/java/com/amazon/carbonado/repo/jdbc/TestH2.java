@@ -23,6 +23,9 @@ import java.math.BigInteger;
 
 import java.io.*;
 
+import java.util.List;
+import java.util.Random;
+
 import java.sql.DriverManager;
 
 import junit.framework.TestSuite;
@@ -39,6 +42,7 @@ import com.amazon.carbonado.repo.indexed.IndexedRepositoryBuilder;
 
 import com.amazon.carbonado.TestUtilities;
 
+import com.amazon.carbonado.stored.StorableTestBasic;
 import com.amazon.carbonado.stored.StorableWithLobs;
 import com.amazon.carbonado.stored.WithPropertyOther;
 
@@ -108,6 +112,197 @@ public class TestH2 extends com.amazon.carbonado.TestStorables {
     }
     */
 
+    @Override
+    public void test_indexEndpointsPlan() {
+        // Ordering is pushed down to SQL, so there is no index scan plan.
+    }
+
+    public void test_repeatedStatements() throws Exception {
+        Storage<StorableTestBasic> storage = getRepository().storageFor(StorableTestBasic.class);
+
+        for (int i=0; i<100; i++) {
+            StorableTestBasic stb = storage.prepare();
+            stb.setId(i);
+            stb.setStringProp("str-" + (i % 10));
+            stb.setIntProp(i % 10);
+            stb.setLongProp(i);
+            stb.setDoubleProp(i);
+            stb.insert();
+        }
+
+        // Execute the same statements repeatedly with different values,
+        // interleaved with each other, inside and outside of transactions.
+
+        Query<StorableTestBasic> byInt = storage.query("intProp = ?");
+        Query<StorableTestBasic> byString = storage.query("stringProp = ? & longProp >= ?");
+
+        for (int round=0; round<20; round++) {
+            Transaction txn = (round & 1) == 0 ? null : getRepository().enterTransaction();
+            try {
+                for (int i=0; i<10; i++) {
+                    List<StorableTestBasic> list = byInt.with(i).fetch().toList();
+                    assertEquals(10, list.size());
+                    for (StorableTestBasic stb : list) {
+                        assertEquals(i, stb.getIntProp());
+                    }
+
+                    assertEquals(10 - round / 2, byString.with("str-" + i)
+                                 .with((long) (round / 2) * 10).count());
+
+                    StorableTestBasic stb = storage.prepare();
+                    stb.setId(round * 5 + i % 5);
+                    stb.load();
+                    stb.setDoubleProp(round);
+                    stb.update();
+                }
+
+                if (txn != null) {
+                    txn.commit();
+                }
+            } finally {
+                if (txn != null) {
+                    txn.exit();
+                }
+            }
+        }
+
+        for (int round=0; round<20; round++) {
+            for (int i=0; i<5; i++) {
+                StorableTestBasic stb = storage.prepare();
+                stb.setId(round * 5 + i);
+                stb.load();
+                assertEquals((double) round, stb.getDoubleProp(), 0.0);
+            }
+        }
+    }
+
+    public void test_lobScan() throws Exception {
+        Storage<StorableWithLobs> storage = getRepository().storageFor(StorableWithLobs.class);
+
+        final int count = 200;
+
+        for (int i=0; i<count; i++) {
+            StorableWithLobs lobs = storage.prepare();
+            lobs.setBlobValue(new ByteArrayBlob(lobContent(i).getBytes()));
+            lobs.setClobValue(new StringClob(lobContent(count - i)));
+            lobs.insert();
+        }
+
+        // Read LOB content while scanning rows in order.
+        Transaction txn = getRepository().enterTransaction();
+        try {
+            Cursor<StorableWithLobs> cursor = storage.query().orderBy("id").fetch();
+            int i = 0;
+            while (cursor.hasNext()) {
+                StorableWithLobs lobs = cursor.next();
+                assertEquals(lobContent(i), lobs.getBlobValue().asString());
+                assertEquals(lobContent(count - i), lobs.getClobValue().asString());
+                i++;
+            }
+            assertEquals(count, i);
+            txn.commit();
+        } finally {
+            txn.exit();
+        }
+
+        // Abandon a scan early, and verify other operations are not affected.
+        Cursor<StorableWithLobs> cursor;
+        txn = getRepository().enterTransaction();
+        try {
+            cursor = storage.query().orderBy("-id").fetch();
+            for (int i=0; i<10; i++) {
+                assertTrue(cursor.hasNext());
+                assertEquals(lobContent(count - 1 - i), cursor.next().getBlobValue().asString());
+            }
+
+            assertEquals(count, storage.query().count());
+            txn.commit();
+        } finally {
+            txn.exit();
+        }
+
+        // Exiting the transaction closes the abandoned cursor.
+        assertFalse(cursor.hasNext());
+
+        List<StorableWithLobs> last = storage.query().orderBy("-id").fetchSlice(0, 1L).toList();
+        assertEquals(1, last.size());
+        assertEquals(lobContent(count - 1), last.get(0).getBlobValue().asString());
+        assertEquals(count, storage.query().count());
+    }
+
+    private static String lobContent(int i) {
+        StringBuilder b = new StringBuilder();
+        while (b.length() < 4000) {
+            b.append(i).append(':');
+        }
+        return b.toString();
+    }
+
+    public void test_lobLargeContent() throws Exception {
+        final long seed = 9823744123L;
+        final int length = 1000000;
+
+        Storage<StorableWithLobs> storage = getRepository().storageFor(StorableWithLobs.class);
+
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+
+        char[] chars = new char[length];
+        Random rnd = new Random(seed);
+        for (int i=0; i<length; i++) {
+            chars[i] = (char) ('a' + rnd.nextInt(26));
+        }
+
+        StorableWithLobs lobs = storage.prepare();
+        lobs.setBlobValue(new ByteArrayBlob(bytes));
+        lobs.setClobValue(new StringClob(new String(chars)));
+        lobs.insert();
+
+        lobs.load();
+        assertEquals(length, lobs.getBlobValue().getLength());
+        assertEquals(length, lobs.getClobValue().getLength());
+
+        // Read content incrementally.
+        InputStream in = lobs.getBlobValue().openInputStream();
+        for (int i=0; i<length; i++) {
+            assertEquals(bytes[i] & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+
+        Reader r = lobs.getClobValue().openReader();
+        for (int i=0; i<length; i++) {
+            assertEquals(chars[i], r.read());
+        }
+        assertEquals(-1, r.read());
+        r.close();
+
+        // Read from an offset.
+        in = lobs.getBlobValue().openInputStream(length - 10);
+        for (int i=length-10; i<length; i++) {
+            assertEquals(bytes[i] & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+
+        // Replace with shorter content.
+        byte[] shorter = new byte[length / 3];
+        System.arraycopy(bytes, 0, shorter, 0, shorter.length);
+        lobs.setBlobValue(new ByteArrayBlob(shorter));
+        lobs.update();
+
+        lobs.load();
+        assertEquals(shorter.length, lobs.getBlobValue().getLength());
+        assertEquals(length, lobs.getClobValue().getLength());
+
+        in = lobs.getBlobValue().openInputStream();
+        for (int i=0; i<shorter.length; i++) {
+            assertEquals(shorter[i] & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
     // Override because H2 does not fully support LOBs.
     @Override
     public void test_lobInsert() throws Exception {
@@ -18,6 +18,15 @@
 
 package com.amazon.carbonado.repo.je;
 
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
@@ -69,6 +78,195 @@ public class TestTransaction extends TestCase {
         mRepo = null;
     }
 
+    public void testConcurrentDurableCommits() throws Exception {
+        File dir = TestUtilities.makeTempDir("test-commits");
+        File crashDir = TestUtilities.makeTempDir("test-commits-crash");
+        try {
+            final int threadCount = 8;
+            final int perThread = 200;
+
+            final Repository repo = buildDurable("test-commits", dir, false);
+            try {
+                final Storage<StorableTestBasic> storage =
+                    repo.storageFor(StorableTestBasic.class);
+                runCommits(repo, storage, threadCount, perThread);
+
+                // Capture the log files while the repository is still open,
+                // as if the process had crashed.
+                copyLogFiles(dir, crashDir);
+            } finally {
+                repo.close();
+            }
+
+            // Every committed transaction must survive recovery from the
+            // crash image as well as a clean reopen.
+            assertCommitted(buildDurable("test-commits", crashDir, true), threadCount, perThread);
+            assertCommitted(buildDurable("test-commits", dir, false), threadCount, perThread);
+        } finally {
+            TestUtilities.deleteTempDir(dir);
+            TestUtilities.deleteTempDir(crashDir);
+        }
+    }
+
+    private void runCommits(final Repository repo,
+                            final Storage<StorableTestBasic> storage,
+                            final int threadCount,
+                            final int perThread)
+        throws Exception
+    {
+        ExecutorService es = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i=0; i<threadCount; i++) {
+                final int t = i;
+                results.add(es.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        int committed = 0;
+                        for (int j=0; j<perThread; j++) {
+                            Transaction txn = repo.enterTransaction();
+                            try {
+                                StorableTestBasic stb = storage.prepare();
+                                stb.setId(t * perThread + j);
+                                stb.setStringProp("hello");
+                                stb.setIntProp(t);
+                                stb.setLongProp(j);
+                                stb.setDoubleProp(0);
+                                stb.insert();
+                                txn.commit();
+                                committed++;
+                            } finally {
+                                txn.exit();
+                            }
+                        }
+                        return committed;
+                    }
+                }));
+            }
+
+            for (Future<Integer> result : results) {
+                assertEquals(perThread, result.get().intValue());
+            }
+        } finally {
+            // Don't let the caller close the repository under running tasks.
+            es.shutdown();
+            es.awaitTermination(60, TimeUnit.SECONDS);
+        }
+    }
+
+    public void testRepeatedReopen() throws Exception {
+        File dir = TestUtilities.makeTempDir("test-reopen");
+        File crashDir = TestUtilities.makeTempDir("test-reopen-crash");
+        try {
+            final int rounds = 5;
+            final int perRound = 1000;
+
+            for (int round=0; round<rounds; round++) {
+                Repository repo = buildDurable("test-reopen", dir, false);
+                try {
+                    Storage<StorableTestBasic> storage =
+                        repo.storageFor(StorableTestBasic.class);
+
+                    // Everything committed before the previous close is present.
+                    assertEquals(round * perRound, storage.query().count());
+                    for (int i=0; i<round * perRound; i += 97) {
+                        StorableTestBasic stb = storage.prepare();
+                        stb.setId(i);
+                        stb.load();
+                        assertEquals(i / perRound, stb.getIntProp());
+                    }
+
+                    Transaction txn = repo.enterTransaction();
+                    try {
+                        for (int i=0; i<perRound; i++) {
+                            StorableTestBasic stb = storage.prepare();
+                            stb.setId(round * perRound + i);
+                            stb.setStringProp("hello");
+                            stb.setIntProp(round);
+                            stb.setLongProp(i);
+                            stb.setDoubleProp(0);
+                            stb.insert();
+                        }
+                        txn.commit();
+                    } finally {
+                        txn.exit();
+                    }
+
+                    // Rolled back work must not reappear after reopening.
+                    txn = repo.enterTransaction();
+                    try {
+                        StorableTestBasic stb = storage.prepare();
+                        stb.setId(-1 - round);
+                        stb.setStringProp("rolled back");
+                        stb.setIntProp(-1);
+                        stb.setLongProp(0);
+                        stb.setDoubleProp(0);
+                        stb.insert();
+                    } finally {
+                        txn.exit();
+                    }
+
+                    if (round == rounds - 1) {
+                        // Take a crash image of the final round before closing.
+                        copyLogFiles(dir, crashDir);
+                    }
+                } finally {
+                    repo.close();
+                }
+            }
+
+            // Recovery from the crash image must produce the same contents
+            // as the clean reopens.
+            Repository repo = buildDurable("test-reopen", crashDir, true);
+            try {
+                Storage<StorableTestBasic> storage = repo.storageFor(StorableTestBasic.class);
+                assertEquals(rounds * perRound, storage.query().count());
+                assertEquals(0, storage.query("intProp = ?").with(-1).count());
+                for (int i=0; i<rounds; i++) {
+                    assertEquals(perRound, storage.query("intProp = ?").with(i).count());
+                }
+            } finally {
+                repo.close();
+            }
+        } finally {
+            TestUtilities.deleteTempDir(dir);
+            TestUtilities.deleteTempDir(crashDir);
+        }
+    }
+
+    private Repository buildDurable(String name, File dir, boolean recover)
+        throws RepositoryException
+    {
+        BDBRepositoryBuilder bob = new BDBRepositoryBuilder();
+        bob.setProduct("JE");
+        bob.setName(name);
+        bob.setCacheSize(100000);
+        bob.setEnvironmentHomeFile(dir);
+        bob.setRunFullRecovery(recover);
+        return bob.build();
+    }
+
+    private void assertCommitted(Repository repo, int threadCount, int perThread)
+        throws Exception
+    {
+        try {
+            Storage<StorableTestBasic> storage = repo.storageFor(StorableTestBasic.class);
+            assertEquals(threadCount * perThread, storage.query().count());
+            for (int i=0; i<threadCount; i++) {
+                assertEquals(perThread, storage.query("intProp = ?").with(i).count());
+            }
+        } finally {
+            repo.close();
+        }
+    }
+
+    private static void copyLogFiles(File fromDir, File toDir) throws Exception {
+        for (File f : fromDir.listFiles()) {
+            if (f.getName().endsWith(".jdb")) {
+                TestUtilities.copyFile(f, new File(toDir, f.getName()));
+            }
+        }
+    }
+
     public void testNestedRollback() throws Exception {
         Storage<StorableTestBasic> storage = mRepo.storageFor(StorableTestBasic.class);
         StorableTestBasic stb;
@@ -22,6 +22,8 @@ import java.io.File;
 
 import java.net.InetAddress;
 
+import java.util.Random;
+
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
@@ -235,6 +237,51 @@ public class CompressionTest extends TestCase {
         assertEquals(0, layout.getGeneration());
     }
 
+    public void test_reopenSmallRecords() throws Exception {
+        // Small redundant records written across several compression mode
+        // changes must all remain readable after each reopen.
+
+        mDir = TestUtilities.makeTempDir("comp-reopen");
+
+        BDBRepositoryBuilder bdb = new BDBRepositoryBuilder();
+        bdb.setName("comp-reopen");
+        bdb.setEnvironmentHomeFile(mDir);
+        bdb.setCacheSize(200000);
+        bdb.setTransactionWriteNoSync(true);
+
+        String[] modes = {"GZIP", "GZIP", "NONE", "GZIP", "NONE"};
+        int perPhase = 1000;
+
+        for (int phase=0; phase<modes.length; phase++) {
+            bdb.setCompressor(StorableMessage.class.getName(), modes[phase]);
+            mRepository = bdb.build();
+
+            Storage<StorableMessage> storage = mRepository.storageFor(StorableMessage.class);
+
+            for (int i=0; i<perPhase; i++) {
+                StorableMessage message = storage.prepare();
+                message.setKey(phase + "-" + i);
+                message.setValue("WORDWORDWORDWORD" + i);
+                message.setSecondValue("WORD" + phase);
+                message.insert();
+            }
+
+            assertEquals((phase + 1) * perPhase, storage.query().count());
+
+            Cursor<StorableMessage> cursor = storage.query().fetch();
+            while (cursor.hasNext()) {
+                StorableMessage message = cursor.next();
+                String key = message.getKey();
+                int dash = key.indexOf('-');
+                assertEquals("WORDWORDWORDWORD" + key.substring(dash + 1), message.getValue());
+                assertEquals("WORD" + key.substring(0, dash), message.getSecondValue());
+            }
+
+            mRepository.close();
+            mRepository = null;
+        }
+    }
+
     public void test_unevolvable() throws Exception {
         // Demonstrate that unevolvable storables cannot switch compression mode.
 
@@ -273,6 +320,108 @@ public class CompressionTest extends TestCase {
         }
     }
 
+    public void test_roundTrip() throws Exception {
+        // Verify values of all sizes and compressibility survive compression,
+        // and that types without a compressor are unaffected.
+
+        mRepository1 = createZippedRepository("comp-roundtrip");
+        Storage<StorableMessage1> storage = mRepository1.storageFor(StorableMessage1.class);
+        Storage<StorableMessage> plain = mRepository1.storageFor(StorableMessage.class);
+
+        Random rnd = new Random(2893742);
+        String[] values = new String[500];
+
+        for (int i=0; i<values.length; i++) {
+            String value;
+            switch (i % 5) {
+            default:
+                value = "";
+                break;
+            case 1:
+                value = TestUtilities.sRandomText(1, 20, rnd);
+                break;
+            case 2:
+                value = TestUtilities.sRandomText(100, 10000, rnd);
+                break;
+            case 3:
+                value = randomChars(rnd, rnd.nextInt(10000));
+                break;
+            case 4:
+                value = "WORD";
+                for (int j=rnd.nextInt(12); --j>=0; ) {
+                    value = value + value;
+                }
+                break;
+            }
+            values[i] = value;
+
+            StorableMessage1 message = storage.prepare();
+            message.setKey(keyFor(i));
+            message.setValue(value);
+            message.insert();
+
+            StorableMessage other = plain.prepare();
+            other.setKey(keyFor(i));
+            other.setValue(value);
+            other.setSecondValue(value);
+            other.insert();
+        }
+
+        Cursor<StorableMessage1> cursor = storage.query().orderBy("key").fetch();
+        for (int i=0; i<values.length; i++) {
+            assertTrue(cursor.hasNext());
+            StorableMessage1 message = cursor.next();
+            assertEquals(keyFor(i), message.getKey());
+            assertEquals(values[i], message.getValue());
+        }
+        assertFalse(cursor.hasNext());
+
+        // Replace values with ones of a different size.
+        String[] originals = values.clone();
+        for (int i=0; i<values.length; i++) {
+            StorableMessage1 message = storage.prepare();
+            message.setKey(keyFor(i));
+            message.load();
+            values[i] = originals[(i + 1) % values.length];
+            message.setValue(values[i]);
+            message.update();
+        }
+
+        for (int i=0; i<values.length; i++) {
+            StorableMessage1 message = storage.prepare();
+            message.setKey(keyFor(i));
+            if (i % 2 == 0) {
+                message.delete();
+                continue;
+            }
+            message.load();
+            assertEquals(values[i], message.getValue());
+            assertEquals(2, message.getVersion());
+
+            StorableMessage other = plain.prepare();
+            other.setKey(keyFor(i));
+            other.load();
+            assertEquals(originals[i], other.getValue());
+        }
+
+        assertEquals(values.length / 2, storage.query().count());
+        assertEquals(values.length, plain.query().count());
+    }
+
+    private static String keyFor(int i) {
+        String key = "0000" + i;
+        return key.substring(key.length() - 5);
+    }
+
+    private static String randomChars(Random rnd, int length) {
+        char[] chars = new char[length];
+        for (int i=0; i<length; i++) {
+            chars[i] = (char) (rnd.nextBoolean() ? (0x20 + rnd.nextInt(0x5f))
+                               : (0x100 + rnd.nextInt(0x1000)));
+        }
+        return new String(chars);
+    }
+
     private Repository createRepository(String name) throws Exception {
         BDBRepositoryBuilder bdb = new BDBRepositoryBuilder();
 
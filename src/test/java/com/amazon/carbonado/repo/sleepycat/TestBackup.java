@@ -24,6 +24,11 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.zip.CRC32;
+
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
@@ -235,4 +240,132 @@ public class TestBackup extends TestCase {
             assertTrue(s.tryLoad());
         }
     }
+
+    public void testIncrementalChainJE() throws Exception {
+        mProduct = "JE";
+        createBackup();
+        mBackupDir = TestUtilities.makeTempDir("test-backup-JE-chain");
+        incrementalChain();
+    }
+
+    public void testIncrementalChainCore() throws Exception {
+        mProduct = "DB";
+        createBackup();
+        mBackupDir = TestUtilities.makeTempDir("test-backup-DB-chain");
+        incrementalChain();
+    }
+
+    /**
+     * Restores from a full backup followed by a chain of incremental backups.
+     */
+    public void incrementalChain() throws Exception {
+        Storage<StorableTestBasic> storage = mRepo.storageFor(StorableTestBasic.class);
+
+        HotBackupCapability cap = mRepo.getCapability(HotBackupCapability.class);
+        assertNotNull(cap);
+
+        final int rounds = 4;
+        final int perRound = 100;
+
+        long lastLogNumber = -1;
+
+        // Checksums of the source files, by name, as of the latest round
+        // which copied them.
+        Map<String, Long> checksums = new HashMap<String, Long>();
+
+        for (int round = 0; round < rounds; ++round) {
+            for (int i = 0; i < perRound; ++i) {
+                StorableTestBasic stb = storage.prepare();
+                stb.setId(round * perRound + i);
+                stb.setStringProp("round-" + round);
+                stb.setIntProp(round);
+                stb.setLongProp(i);
+                stb.setDoubleProp(0);
+                assertTrue(stb.tryInsert());
+            }
+
+            // Modify some records from the previous round.
+            if (round > 0) {
+                for (int i = 0; i < perRound; i += 2) {
+                    StorableTestBasic stb = storage.prepare();
+                    stb.setId((round - 1) * perRound + i);
+                    assertTrue(stb.tryLoad());
+                    stb.setStringProp("updated-" + round);
+                    assertTrue(stb.tryUpdate());
+                }
+            }
+
+            HotBackupCapability.Backup b;
+            if (round == 0) {
+                b = cap.startBackup();
+            } else {
+                b = cap.startIncrementalBackup(lastLogNumber);
+            }
+            assertNotNull(b);
+
+            File[] files = b.getFiles();
+            for (File f : files) {
+                checksums.put(f.getName(), checksum(f));
+            }
+            copyFiles(files, mBackupDir);
+            lastLogNumber = b.getLastLogNumber();
+            b.endBackup();
+        }
+
+        // Verify the restored files before recovery runs over them.
+        assertEquals(checksums.size(), mBackupDir.listFiles().length);
+        for (Map.Entry<String, Long> entry : checksums.entrySet()) {
+            File restored = new File(mBackupDir, entry.getKey());
+            assertTrue(restored.exists());
+            assertEquals(entry.getValue().longValue(), checksum(restored));
+        }
+
+        BDBRepositoryBuilder bob = new BDBRepositoryBuilder();
+        bob.setProduct(mProduct);
+        bob.setName("test-backup" + mProduct);
+        bob.setCacheSize(100000);
+        bob.setEnvironmentHomeFile(mBackupDir);
+        bob.setRunFullRecovery(true);
+        mBackupRepo = bob.build();
+
+        Storage<StorableTestBasic> backupStorage = mBackupRepo.storageFor(StorableTestBasic.class);
+        assertEquals(rounds * perRound, backupStorage.query().count());
+
+        for (int round = 0; round < rounds; ++round) {
+            for (int i = 0; i < perRound; ++i) {
+                StorableTestBasic s = backupStorage.prepare();
+                s.setId(round * perRound + i);
+                assertTrue(s.tryLoad());
+                assertEquals(round, s.getIntProp());
+                if (round < rounds - 1 && i % 2 == 0) {
+                    assertEquals("updated-" + (round + 1), s.getStringProp());
+                } else {
+                    assertEquals("round-" + round, s.getStringProp());
+                }
+            }
+        }
+    }
+
+    private static void copyFiles(File[] files, File dir) throws Exception {
+        for (File f : files) {
+            File newFile = new File(dir, f.getName());
+            TestUtilities.copyFile(f, newFile);
+            assertEquals(f.length(), newFile.length());
+        }
+    }
+
+    private static long checksum(File file) throws Exception {
+        byte[] buf = new byte[1024];
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            int amt;
+            while ((amt = in.read(buf)) > 0) {
+                crc.update(buf, 0, amt);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
 }
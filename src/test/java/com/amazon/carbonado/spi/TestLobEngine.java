@@ -20,9 +20,16 @@ package com.amazon.carbonado.spi;
 
 import java.io.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
@@ -324,6 +331,131 @@ public class TestLobEngine extends TestCase {
         in.close();
     }
 
+    public void testIdenticalContent() throws Exception {
+        // Blobs sharing identical content must remain independent.
+
+        final int count = 5;
+        byte[] data = new byte[12345];
+        new Random(SEED).nextBytes(data);
+
+        Blob[] blobs = new Blob[count];
+        long[] locators = new long[count];
+        byte[][] expected = new byte[count][];
+
+        for (int i=0; i<count; i++) {
+            blobs[i] = mEngine.createNewBlob(1000);
+            locators[i] = mEngine.getLocator(blobs[i]);
+            mEngine.setBlobValue(locators[i], new ByteArrayBlob(data));
+            expected[i] = data.clone();
+        }
+
+        // Truncate one.
+        blobs[0].setLength(2500);
+        Arrays.fill(expected[0], 2500, expected[0].length, (byte) 0);
+
+        // Overwrite a block in the middle of another.
+        {
+            OutputStream out = blobs[1].openOutputStream(3000);
+            for (int i=3000; i<4000; i++) {
+                out.write(i);
+                expected[1][i] = (byte) i;
+            }
+            out.close();
+        }
+
+        // Extend another with the same content again.
+        {
+            OutputStream out = blobs[2].openOutputStream(data.length);
+            out.write(data);
+            out.close();
+            byte[] doubled = new byte[data.length * 2];
+            System.arraycopy(data, 0, doubled, 0, data.length);
+            System.arraycopy(data, 0, doubled, data.length, data.length);
+            expected[2] = doubled;
+        }
+
+        // Delete another.
+        mEngine.deleteLob(locators[3]);
+
+        assertEquals(expected[0], 2500, blobs[0]);
+        assertEquals(expected[1], expected[1].length, blobs[1]);
+        assertEquals(expected[2], expected[2].length, blobs[2]);
+        assertEquals(expected[4], expected[4].length, blobs[4]);
+
+        try {
+            blobs[3].getLength();
+            fail();
+        } catch (FetchNoneException e) {
+        }
+
+        for (int i=0; i<count; i++) {
+            if (i != 3) {
+                mEngine.deleteLob(locators[i]);
+            }
+        }
+
+        {
+            Cursor<?> cursor = mRepo.storageFor(StoredLob.class).query().fetch();
+            assertFalse(cursor.hasNext());
+        }
+
+        {
+            Cursor<?> cursor = mRepo.storageFor(StoredLob.Block.class).query().fetch();
+            assertFalse(cursor.hasNext());
+        }
+    }
+
+    public void testRereadAfterModify() throws Exception {
+        // Repeated reads through separate Blob instances must always observe
+        // the latest writes, length changes and deletes.
+
+        byte[] buf = new byte[10000];
+        new Random(SEED).nextBytes(buf);
+        int bufLen = buf.length;
+
+        Blob blob = mEngine.createNewBlob(1000);
+        long locator = mEngine.getLocator(blob);
+        mEngine.setBlobValue(locator, new ByteArrayBlob(buf));
+
+        for (int i=0; i<3; i++) {
+            assertEquals(buf, bufLen, blob);
+            assertEquals(buf, bufLen, mEngine.getBlobValue(locator));
+        }
+
+        // Write through one instance, read through others.
+        {
+            OutputStream out = mEngine.getBlobValue(locator).openOutputStream(4500);
+            for (int i=4500; i<5500; i++) {
+                out.write(~i);
+                buf[i] = (byte) ~i;
+            }
+            out.close();
+        }
+
+        assertEquals(buf, bufLen, blob);
+        assertEquals(buf, bufLen, mEngine.getBlobValue(locator));
+
+        // Shrink and grow, exposing zeros where content was.
+        mEngine.getBlobValue(locator).setLength(3333);
+        assertEquals(buf, 3333, blob);
+        blob.setLength(bufLen);
+        Arrays.fill(buf, 3333, bufLen, (byte) 0);
+        assertEquals(buf, bufLen, mEngine.getBlobValue(locator));
+
+        // Replace all content.
+        new Random(SEED + 1).nextBytes(buf);
+        mEngine.setBlobValue(locator, new ByteArrayBlob(buf));
+        assertEquals(buf, bufLen, blob);
+
+        mEngine.deleteLob(locator);
+
+        try {
+            blob.getLength();
+            fail();
+        } catch (FetchNoneException e) {
+        }
+    }
+
     public void testChaos() throws Exception {
         byte[] buf = new byte[123456];
         int bufLen = 0;
@@ -385,6 +517,100 @@ public class TestLobEngine extends TestCase {
         }
     }
 
+    public void testBlockSizes() throws Exception {
+        final int length = 54321;
+        int[] blockSizes = {10, 100, 1000, 4096, 65536};
+        int[] bufferSizes = {1, 500, 8192};
+
+        for (int blockSize : blockSizes) {
+            for (int bufferSize : bufferSizes) {
+                Blob blob = mEngine.createNewBlob(blockSize);
+                long locator = mEngine.getLocator(blob);
+
+                Random rnd = new Random(SEED);
+                OutputStream out = blob.openOutputStream(0, bufferSize);
+                for (int i=0; i<length; i++) {
+                    out.write(rnd.nextInt());
+                }
+                out.close();
+
+                assertEquals(length, blob.getLength());
+
+                // Read from positions on and around block boundaries.
+                long[] positions = {0, blockSize - 1, blockSize, blockSize + 1, length - 1};
+                for (long pos : positions) {
+                    if (pos < 0 || pos >= length) {
+                        continue;
+                    }
+                    rnd = new Random(SEED);
+                    for (long i=0; i<pos; i++) {
+                        rnd.nextInt();
+                    }
+                    InputStream in = blob.openInputStream(pos, bufferSize);
+                    byte[] buf = new byte[777];
+                    long remaining = length - pos;
+                    while (remaining > 0) {
+                        int amt = in.read(buf);
+                        assertTrue(amt > 0);
+                        for (int i=0; i<amt; i++) {
+                            assertEquals(rnd.nextInt() & 0xff, buf[i] & 0xff);
+                        }
+                        remaining -= amt;
+                    }
+                    assertEquals(-1, in.read());
+                    in.close();
+                }
+
+                mEngine.deleteLob(locator);
+            }
+        }
+    }
+
+    public void testConcurrentBlobs() throws Exception {
+        final int threadCount = 8;
+        final int length = 100000;
+
+        ExecutorService es = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int t=0; t<threadCount; t++) {
+                final long seed = SEED + t;
+                results.add(es.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        Blob blob = mEngine.createNewBlob(1000);
+                        long locator = mEngine.getLocator(blob);
+
+                        Random rnd = new Random(seed);
+                        byte[] data = new byte[length];
+                        rnd.nextBytes(data);
+
+                        OutputStream out = blob.openOutputStream();
+                        out.write(data);
+                        out.close();
+
+                        for (int pass=0; pass<3; pass++) {
+                            assertEquals(data, length, mEngine.getBlobValue(locator));
+                        }
+
+                        mEngine.deleteLob(locator);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } finally {
+            es.shutdown();
+        }
+
+        {
+            Cursor<?> cursor = mRepo.storageFor(StoredLob.Block.class).query().fetch();
+            assertFalse(cursor.hasNext());
+        }
+    }
+
     private void fillRandom(byte[] buf, int length, Random rnd) {
         for (int i=0; i<length; i++) {
             buf[i] = (byte) rnd.nextInt();
@@ -18,6 +18,12 @@
 
 package com.amazon.carbonado.txn;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
 import com.amazon.carbonado.Cursor;
 
 import junit.framework.TestCase;
@@ -221,4 +227,41 @@ public class TestCursorList extends TestCase {
             */
         }
     }
+
+    // Tests repeated registration and unregistration in random order.
+    public void testRegisterChurn() {
+        Random rnd = new Random(9238472);
+        List<Cursor> registered = new ArrayList<Cursor>();
+        Map<Cursor, Object> expected = new IdentityHashMap<Cursor, Object>();
+
+        for (int round=0; round<10000; round++) {
+            if (registered.isEmpty() || rnd.nextInt(3) != 0) {
+                Cursor cursor = EmptyCursorFactory.newEmptyCursor();
+                Object value = rnd.nextBoolean() ? null : Integer.valueOf(round);
+                mList.register(cursor, value);
+                registered.add(cursor);
+                expected.put(cursor, value);
+            } else {
+                Cursor cursor = registered.remove(rnd.nextInt(registered.size()));
+                Object value = mList.unregister(cursor);
+                assertEquals(expected.remove(cursor), value);
+            }
+
+            assertEquals(registered.size(), mList.size());
+        }
+
+        // Order of entries is not relevant, only that all are present.
+        Map<Cursor, Object> actual = new IdentityHashMap<Cursor, Object>();
+        for (int i=0; i<mList.size(); i++) {
+            actual.put(mList.getCursor(i), mList.getValue(i));
+        }
+        assertEquals(expected, actual);
+
+        // Unregistering an unknown cursor does nothing.
+        assertNull(mList.unregister(EmptyCursorFactory.newEmptyCursor()));
+        assertEquals(registered.size(), mList.size());
+
+        mList.closeCursors();
+        assertEquals(0, mList.size());
+    }
 }
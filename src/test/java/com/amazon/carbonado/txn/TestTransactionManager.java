@@ -18,9 +18,13 @@
 
 package com.amazon.carbonado.txn;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -162,6 +166,70 @@ public class TestTransactionManager extends TestCase {
         assertNull(t2.parent);
     }
 
+    public void testAttachHandoff() throws Exception {
+        final Transaction txn = mTxnMgr.localScope().enter(null);
+        txn.detach();
+
+        // Hand the transaction to a different pooled thread for each request.
+
+        ExecutorService es = Executors.newFixedThreadPool(4);
+
+        for (int i=0; i<100; i++) {
+            es.submit(new Runnable() {
+                public void run() {
+                    txn.attach();
+                    txn.detach();
+                }
+            }).get();
+        }
+
+        es.shutdown();
+
+        txn.attach();
+        txn.exit();
+
+        TransactionScope<Txn> scope = mTxnMgr.localScope();
+        Transaction txn2 = scope.enter(null);
+        assertNull(scope.getTxn().parent);
+        txn2.exit();
+    }
+
+    public void testManyScopes() throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(16);
+
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+
+        for (int i=0; i<1000; i++) {
+            results.add(es.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    TransactionScope<Txn> scope = mTxnMgr.localScope();
+                    Transaction txn = scope.enter(null);
+                    try {
+                        Txn t = scope.getTxn();
+                        assertNotNull(t);
+                        assertNull(t.parent);
+                        Transaction nested = scope.enter(null);
+                        try {
+                            assertEquals(t, scope.getTxn().parent);
+                        } finally {
+                            nested.exit();
+                        }
+                        assertEquals(t, scope.getTxn());
+                    } finally {
+                        txn.exit();
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<Object> result : results) {
+            result.get();
+        }
+
+        es.shutdown();
+    }
+
     private static class Txn {
         final Txn parent;
 